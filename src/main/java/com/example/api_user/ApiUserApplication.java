@@ -17,16 +17,8 @@ public class  ApiUserApplication {
 
 }
 /* No MySQL
-CREATE DATABASE Test;
-USE Test;
-
-CREATE TABLE Users(
-	id INT PRIMARY KEY AUTO_INCREMENT NOT NULL,
-	username VARCHAR(30) NOT NULL,
-    email VARCHAR(100) NOT NULL,
-    password VARCHAR(50),
-    role VARCHAR(50)
-);
+Um banco por shard (ex.: users_a, users_b...), configurados em app.sharding.shards[i].*
+As tabelas de cada shard estao descritas no comentario do ShardingConfig.
  */
 
 /* No Postman POST http://localhost:8080/api/users (body - raw/json)
@@ -1,8 +1,12 @@
 package com.example.api_user.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.web.PagedModel;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import com.example.api_user.service.UserService;
 import com.example.api_user.dto.UserDTO;
 
@@ -30,11 +34,33 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_DEPTH = 10_000;
+
     @GetMapping
     public List<UserDTO> getAllUsers() {
         return userService.getAllUsers();
     }
 
+    //Paginacao: GET /api/users/page?page=0&size=20 (ordenado por id)
+    //Resposta: {"content": [...], "page": {"size", "number", "totalElements", "totalPages"}}
+    //Cada shard carrega todas as linhas ate o fim da pagina pedida, entao tamanho e profundidade tem limite
+    @GetMapping("/page")
+    public PagedModel<UserDTO> getUsersPage(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "20") int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "page deve ser >= 0 e size entre 1 e " + MAX_PAGE_SIZE);
+        }
+        if (((long) page + 1) * size > MAX_PAGE_DEPTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Paginas alem de " + MAX_PAGE_DEPTH + " usuarios nao sao permitidas");
+        }
+        return new PagedModel<>(userService.getUsersPage(PageRequest.of(page, size)));
+    }
+
+    @GetMapping("/count")
+    public long countUsers() {
+        return userService.countUsers();
+    }
+
     // Anotação @GetMapping:
     // - Mapeia requisições HTTP GET para este metodo.
     // - O caminho associado a este metodo é o definido por @RequestMapping na classe, ou seja, "/api/users".
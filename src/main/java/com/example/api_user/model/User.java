@@ -1,6 +1,9 @@
 package com.example.api_user.model;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
 
 //Metaprogramacao - anotacoes
 @Entity
@@ -24,10 +27,10 @@ import lombok.Data;
 // - Define o nome da tabela no banco de dados que será associada à entidade. Neste caso, a tabela será chamada de `users`.
 // - Sem a anotação @Table, o JPA assume que o nome da tabela é o mesmo da classe, mas com a anotação, você pode personalizar o nome da tabela.
 
-public class User {
+public class User implements Persistable<Integer> {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private int id;
+    //Sem IDENTITY: com a tabela dividida em shards o id vem do UserIdGenerator e decide o shard do usuario
+    private Integer id;
     @Column(unique = true, nullable = false)
     private String username;
     @Column(unique = true, nullable = false)
@@ -37,4 +40,22 @@ public class User {
     @Column(nullable = false)
     private String role;
 
+    //Com o id atribuido pela aplicacao o Spring Data acharia que todo usuario ja existe e faria merge (SELECT + UPDATE).
+    //Usuario novo sempre faz INSERT, entao um id repetido falha na chave primaria em vez de sobrescrever outro usuario.
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean isNew = true;
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
 }
@@ -0,0 +1,64 @@
+package com.example.api_user.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
+
+import java.util.Locale;
+
+//Indice de busca -> id do usuario, para os campos que precisam ser unicos em todos os shards.
+//A chave e o nome do campo + valor ("username:ayumi", "email:ayumi@teste.com") e cada linha fica
+//no shard do hash da chave, entao o login encontra o usuario consultando so dois shards (indice + dono do id).
+//A chave primaria em lookup_key garante que username e email sao unicos entre todos os shards.
+
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "users_lookup_index")
+public class UserLookupIndex implements Persistable<String> {
+    @Id
+    @Column(name = "lookup_key")
+    private String lookupKey;
+    @Column(name = "user_id", nullable = false)
+    private int userId;
+
+    //Sempre INSERT para linhas novas (sem o SELECT do merge), para que um valor repetido falhe na chave primaria
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean isNew = true;
+
+    public UserLookupIndex(String lookupKey, int userId) {
+        this.lookupKey = lookupKey;
+        this.userId = userId;
+    }
+
+    //Os valores vao em minusculas: no MySQL a tabela users compara sem diferenciar maiusculas (collation padrao),
+    //entao "Ayumi" e "ayumi" precisam cair na mesma chave (e no mesmo shard) para serem considerados repetidos
+    public static String usernameKey(String username) {
+        return "username:" + username.toLowerCase(Locale.ROOT);
+    }
+
+    public static String emailKey(String email) {
+        return "email:" + email.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String getId() {
+        return lookupKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.api_user.repository;
+
+import com.example.api_user.model.User;
+import com.example.api_user.model.UserLookupIndex;
+import com.example.api_user.sharding.ShardContext;
+import com.example.api_user.sharding.ShardRouter;
+import com.example.api_user.sharding.UserIdGenerator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//Acesso a tabela users dividida em varios shards.
+//- Cada usuario fica no shard do hash do seu id (ShardRouter).
+//- Username e email sao unicos pelo indice users_lookup_index, que fica no shard do hash de cada chave.
+//- Listagem, paginacao e contagem consultam todos os shards em paralelo e juntam o resultado ordenado por id.
+//- O indice e a verdade: sem entrada, o usuario nao existe. So durante um rebalanceamento (app.sharding.previous-shards)
+//  as buscas tambem olham o shard do anel anterior.
+
+@Repository
+public class ShardedUserRepository {
+
+    private static final Sort BY_ID = Sort.by("id");
+
+    private final UserRepository userRepository;
+    private final UserLookupIndexRepository lookupIndexRepository;
+    private final ShardRouter shardRouter;
+    private final UserIdGenerator userIdGenerator;
+    private final ExecutorService shardExecutor;
+
+    public ShardedUserRepository(UserRepository userRepository, UserLookupIndexRepository lookupIndexRepository,
+                                 ShardRouter shardRouter, UserIdGenerator userIdGenerator,
+                                 @Qualifier("shardExecutor") ExecutorService shardExecutor) {
+        this.userRepository = userRepository;
+        this.lookupIndexRepository = lookupIndexRepository;
+        this.shardRouter = shardRouter;
+        this.userIdGenerator = userIdGenerator;
+        this.shardExecutor = shardExecutor;
+    }
+
+    public Optional<User> findById(int id) {
+        Optional<User> user = ShardContext.call(shardRouter.shardForId(id), () -> userRepository.findById(id));
+        int previous = shardRouter.previousShardForId(id);
+        if (user.isPresent() || previous == shardRouter.shardForId(id)) {
+            return user;
+        }
+        //Durante um rebalanceamento o usuario pode ainda estar no shard antigo
+        return ShardContext.call(previous, () -> userRepository.findById(id));
+    }
+
+    //Usado no login: indice no shard do username -> usuario no shard do id
+    public Optional<User> findByUsername(String username) {
+        Optional<UserLookupIndex> index = findLookupKey(UserLookupIndex.usernameKey(username));
+        if (index.isPresent()) {
+            return findById(index.get().getUserId()).filter(user -> user.getUsername().equalsIgnoreCase(username));
+        }
+        if (!shardRouter.isResharding()) {
+            return Optional.empty();
+        }
+        //Linhas da tabela antiga que o ShardRebalancer ainda nao colocou no indice
+        return firstPresent(shard -> userRepository.findByUsername(username));
+    }
+
+    private Optional<UserLookupIndex> findLookupKey(String key) {
+        Optional<UserLookupIndex> index = ShardContext.call(shardRouter.shardForLookupKey(key),
+                () -> lookupIndexRepository.findById(key));
+        int previous = shardRouter.previousShardForLookupKey(key);
+        if (index.isPresent() || previous == shardRouter.shardForLookupKey(key)) {
+            return index;
+        }
+        return ShardContext.call(previous, () -> lookupIndexRepository.findById(key));
+    }
+
+    public List<User> findAll() {
+        return merge(scatter(shard -> userRepository.findAll(BY_ID)));
+    }
+
+    //Cada shard devolve as primeiras (offset + size) linhas por id; a pagina sai da juncao delas.
+    //Paginas muito distantes ficam caras, prefira paginas pequenas.
+    public Page<User> findAll(Pageable pageable) {
+        Pageable firstRows = PageRequest.of(0, Math.toIntExact(pageable.getOffset() + pageable.getPageSize()), BY_ID);
+        List<User> content = merge(scatter(shard -> userRepository.findAll(firstRows).getContent()))
+                .stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, count());
+    }
+
+    public long count() {
+        return scatter(shard -> userRepository.count()).stream().mapToLong(Long::longValue).sum();
+    }
+
+    //Grava o indice primeiro: se o username ou o email ja existir em qualquer shard a insercao falha antes de criar o usuario.
+    //Se depois o usuario nao puder ser gravado as entradas do indice sao apagadas de novo.
+    public User create(User user) {
+        user.setId(userIdGenerator.nextId());
+        List<String> reserved = reserve(lookupKeys(user), user.getId());
+        try {
+            return ShardContext.call(shardRouter.shardForId(user.getId()), () -> userRepository.save(user));
+        } catch (RuntimeException e) {
+            reserved.forEach(this::release);
+            throw e;
+        }
+    }
+
+    public User update(User user, String previousUsername, String previousEmail) {
+        List<String> previousKeys = List.of(UserLookupIndex.usernameKey(previousUsername), UserLookupIndex.emailKey(previousEmail));
+        List<String> added = lookupKeys(user).stream().filter(key -> !previousKeys.contains(key)).toList();
+        List<String> removed = previousKeys.stream().filter(key -> !lookupKeys(user).contains(key)).toList();
+
+        List<String> reserved = reserve(added, user.getId());
+        User saved;
+        try {
+            saved = ShardContext.call(shardRouter.shardForId(user.getId()), () -> userRepository.save(user));
+        } catch (RuntimeException e) {
+            reserved.forEach(this::release);
+            throw e;
+        }
+        removed.forEach(this::release);
+        return saved;
+    }
+
+    public void deleteById(int id) {
+        findById(id).ifPresent(user -> {
+            deleteOnOwnerShards(shardRouter.shardForId(id), shardRouter.previousShardForId(id), () -> userRepository.deleteRowById(id));
+            lookupKeys(user).forEach(this::release);
+        });
+    }
+
+    private static List<String> lookupKeys(User user) {
+        return List.of(UserLookupIndex.usernameKey(user.getUsername()), UserLookupIndex.emailKey(user.getEmail()));
+    }
+
+    //Grava as chaves uma a uma; se alguma ja existir, desfaz as que ja foram gravadas.
+    //Durante um rebalanceamento a chave pode ainda estar no shard do anel anterior, entao ele e consultado antes:
+    //se o ShardRebalancer mover a chave depois dessa consulta, a copia dele ja esta no dono e a insercao falha na chave primaria.
+    private List<String> reserve(List<String> keys, int userId) {
+        List<String> reserved = new ArrayList<>();
+        try {
+            for (String key : keys) {
+                int previous = shardRouter.previousShardForLookupKey(key);
+                if (previous != shardRouter.shardForLookupKey(key)) {
+                    Optional<UserLookupIndex> existing = ShardContext.call(previous, () -> lookupIndexRepository.findById(key));
+                    if (existing.isPresent() && existing.get().getUserId() != userId) {
+                        throw new DataIntegrityViolationException(key + " ja pertence ao usuario " + existing.get().getUserId());
+                    }
+                }
+                ShardContext.run(shardRouter.shardForLookupKey(key),
+                        () -> lookupIndexRepository.save(new UserLookupIndex(key, userId)));
+                reserved.add(key);
+            }
+        } catch (RuntimeException e) {
+            reserved.forEach(this::release);
+            throw e;
+        }
+        return reserved;
+    }
+
+    private void release(String key) {
+        deleteOnOwnerShards(shardRouter.shardForLookupKey(key), shardRouter.previousShardForLookupKey(key),
+                () -> lookupIndexRepository.deleteRowByLookupKey(key));
+    }
+
+    //Durante um rebalanceamento apaga primeiro no shard do anel anterior e depois no dono: se o ShardRebalancer
+    //estiver movendo a linha, o DELETE no shard antigo espera o lock dele, e quando chega a vez do dono
+    //a copia ja esta la para ser apagada.
+    private void deleteOnOwnerShards(int owner, int previous, Runnable delete) {
+        if (previous != owner) {
+            ShardContext.run(previous, delete);
+        }
+        ShardContext.run(owner, delete);
+    }
+
+    //Executa a consulta em todos os shards ao mesmo tempo e devolve os resultados na ordem dos shards
+    private <T> List<T> scatter(IntFunction<T> query) {
+        List<CompletableFuture<T>> futures = IntStream.range(0, shardRouter.getShardCount())
+                .mapToObj(shard -> CompletableFuture.supplyAsync(
+                        () -> ShardContext.call(shard, () -> query.apply(shard)), shardExecutor))
+                .toList();
+        return futures.stream().map(ShardedUserRepository::join).toList();
+    }
+
+    //O join embrulha o erro do shard em CompletionException; devolve o erro original (ex.: DataAccessException)
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private <T> Optional<T> firstPresent(IntFunction<Optional<T>> query) {
+        return scatter(query).stream().flatMap(Optional::stream).findFirst();
+    }
+
+    //Junta as listas dos shards ordenando por id; um usuario copiado em dois shards aparece uma vez so
+    private static List<User> merge(List<List<User>> results) {
+        Map<Integer, User> byId = results.stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toMap(User::getId, Function.identity(), (first, copy) -> first));
+        return byId.values().stream()
+                .sorted(Comparator.comparingInt(User::getId))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.api_user.repository;
+
+import com.example.api_user.model.UserLookupIndex;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+@Repository
+public interface UserLookupIndexRepository extends JpaRepository<UserLookupIndex, String> {
+
+    //Percorre o indice em lotes, usado no rebalanceamento
+    List<UserLookupIndex> findByLookupKeyGreaterThanOrderByLookupKeyAsc(String lookupKey, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from UserLookupIndex i where i.lookupKey = :lookupKey")
+    Optional<UserLookupIndex> findLockedByLookupKey(@Param("lookupKey") String lookupKey);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserLookupIndex i where i.lookupKey = :lookupKey")
+    int deleteRowByLookupKey(@Param("lookupKey") String lookupKey);
+
+}
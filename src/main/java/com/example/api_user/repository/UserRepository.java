@@ -1,10 +1,19 @@
 package com.example.api_user.repository;
 
 import com.example.api_user.model.User;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
+//Consulta apenas o shard atual (ShardContext). Para os usuarios de todos os shards use o ShardedUserRepository.
 @Repository
 public interface UserRepository extends JpaRepository<User, Integer>{
 
@@ -13,4 +22,18 @@ public interface UserRepository extends JpaRepository<User, Integer>{
 
     Optional<User> findByUsername(String username);
 
+    //Percorre os usuarios em lotes pelo id, usado no rebalanceamento
+    List<User> findByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+    //SELECT ... FOR UPDATE: segura a linha enquanto o rebalanceamento copia para outro shard
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from User u where u.id = :id")
+    Optional<User> findLockedById(@Param("id") int id);
+
+    //DELETE direto (sem carregar antes): espera o lock do rebalanceamento e nao falha se a linha ja saiu
+    @Transactional
+    @Modifying
+    @Query("delete from User u where u.id = :id")
+    int deleteRowById(@Param("id") int id);
+
 }
@@ -1,7 +1,9 @@
 package com.example.api_user.service;
 
-import com.example.api_user.repository.UserRepository;
+import com.example.api_user.repository.ShardedUserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import com.example.api_user.dto.UserDTO;
@@ -23,17 +25,27 @@ import java.util.stream.Collectors;
 public class UserService {
 
     @Autowired
-    private UserRepository userRepository;
+    private ShardedUserRepository userRepository; //Tabela users dividida em shards
 
     //Recuperar usuarios
     public List<UserDTO> getAllUsers() {
         return userRepository
-                .findAll() //Pega todos os usuarios do banco de dados
+                .findAll() //Pega todos os usuarios de todos os shards, ordenados por id
                 .stream()
                 .map(this::convertToDTO) //Converter cada um deles em DTO
                 .collect(Collectors.toList()); //Coletar dados e transformar em lista
     }
 
+    //Recuperar uma pagina de usuarios (ordenados por id)
+    public Page<UserDTO> getUsersPage(Pageable pageable) {
+        return userRepository.findAll(pageable).map(this::convertToDTO);
+    }
+
+    //Quantidade de usuarios somando todos os shards
+    public long countUsers() {
+        return userRepository.count();
+    }
+
     //Encontrar User por ID
     public UserDTO getUserById(int id) {
         //Optional: pode ser nulo
@@ -68,7 +80,7 @@ public class UserService {
 
         user.setPassword(new BCryptPasswordEncoder().encode(userDTO.getPassword()));
 
-        userRepository.save(user);
+        userRepository.create(user); //Gera o id e grava no shard do usuario
 
         return convertToDTO(user);
     }
@@ -78,13 +90,15 @@ public class UserService {
         Optional<User> userOptional = userRepository.findById(id);
         if (userOptional.isPresent()) {
             User user = userOptional.get();
+            String previousUsername = user.getUsername();
+            String previousEmail = user.getEmail();
             user.setUsername(userDTO.getUsername());
             user.setEmail(userDTO.getEmail());
             user.setRole(userDTO.getRole());
 
             user.setPassword(new BCryptPasswordEncoder().encode(userDTO.getPassword()));
 
-            userRepository.save(user);
+            userRepository.update(user, previousUsername, previousEmail);
 
             return convertToDTO(user);
         }
@@ -0,0 +1,46 @@
+package com.example.api_user.sharding;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+//Guarda em qual shard a thread atual deve executar as consultas.
+//O ShardRoutingDataSource le esse valor quando a conexao e aberta.
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    //Executa a operacao no shard informado e restaura o shard anterior no final.
+    //Nao pode ser chamado dentro de uma transacao ou com um EntityManager ja ligado a thread:
+    //a conexao aberta continuaria sendo usada e a troca de shard seria ignorada.
+    public static <T> T call(int shard, Supplier<T> operation) {
+        if (!TransactionSynchronizationManager.getResourceMap().isEmpty()) {
+            throw new IllegalStateException("Conexao ja aberta nesta thread, nao e possivel trocar para o shard " + shard);
+        }
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return operation.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void run(int shard, Runnable operation) {
+        call(shard, () -> {
+            operation.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.api_user.sharding;
+
+import com.example.api_user.model.User;
+import com.example.api_user.model.UserLookupIndex;
+import com.example.api_user.repository.UserLookupIndexRepository;
+import com.example.api_user.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+//Ferramenta de rebalanceamento: depois de adicionar (ou renomear) shards, move cada linha
+//para o shard que o ShardRouter escolhe agora.
+//Roda com a aplicacao no ar: a linha e copiada para o shard novo e so depois apagada do antigo,
+//entao ela sempre existe no shard novo ou no do anel anterior, onde o ShardedUserRepository tambem procura.
+//Por isso app.sharding.previous-shards precisa estar configurado em todas as instancias enquanto ele roda.
+//Durante a copia a linha fica travada (SELECT ... FOR UPDATE) no shard antigo: se ela foi apagada pela API
+//depois do lote ser lido nao e copiada, e um DELETE da API espera a copia terminar (ShardedUserRepository.deleteOnOwnerShards).
+//Uma chave do indice que ja esta no shard novo com outro usuario nao e apagada do antigo: fica um aviso no log.
+//Uma copia que ja existe no destino nao e sobrescrita, porque pode ter sido atualizada pela API durante a copia.
+//Tambem cria as entradas do users_lookup_index que faltam (linhas da tabela users antiga, antes dos shards).
+
+@Component
+public class ShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private final UserRepository userRepository;
+    private final UserLookupIndexRepository lookupIndexRepository;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService rebalanceExecutor;
+    private final int batchSize;
+
+    public ShardRebalancer(UserRepository userRepository, UserLookupIndexRepository lookupIndexRepository,
+                           ShardRouter shardRouter, PlatformTransactionManager transactionManager,
+                           @Qualifier("rebalanceExecutor") ExecutorService rebalanceExecutor, ShardingProperties properties) {
+        this.userRepository = userRepository;
+        this.lookupIndexRepository = lookupIndexRepository;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rebalanceExecutor = rebalanceExecutor;
+        this.batchSize = properties.getRebalanceBatchSize();
+    }
+
+    //Devolve quantas linhas (usuarios + entradas do indice) mudaram de shard
+    public int rebalance() {
+        int moved = 0;
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            moved += moveUsers(shard);
+            moved += moveLookupIndex(shard);
+        }
+        log.info("Rebalanceamento concluido: {} linhas movidas", moved);
+        return moved;
+    }
+
+    private int moveUsers(int source) {
+        int moved = 0;
+        int lastId = Integer.MIN_VALUE;
+        List<User> batch;
+        //Paginacao pelo ultimo id lido: as linhas apagadas no caminho nao deslocam os proximos lotes
+        do {
+            int after = lastId;
+            batch = ShardContext.call(source,
+                    () -> userRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, batchSize)));
+            for (User user : batch) {
+                indexUser(user);
+                int target = shardRouter.shardForId(user.getId());
+                if (target != source && moveUser(user.getId(), source, target)) {
+                    moved++;
+                }
+                lastId = user.getId();
+            }
+        } while (batch.size() == batchSize);
+        return moved;
+    }
+
+    //Garante que username e email do usuario estao no indice
+    private void indexUser(User user) {
+        for (String key : List.of(UserLookupIndex.usernameKey(user.getUsername()), UserLookupIndex.emailKey(user.getEmail()))) {
+            int owner = shardRouter.shardForLookupKey(key);
+            Optional<UserLookupIndex> existing = ShardContext.call(owner, () -> lookupIndexRepository.findById(key));
+            if (existing.isEmpty()) {
+                ShardContext.run(owner, () -> lookupIndexRepository.save(new UserLookupIndex(key, user.getId())));
+                log.info("Indice criado: {} -> usuario {}", key, user.getId());
+            } else if (existing.get().getUserId() != user.getId()) {
+                //Dados antigos com valor repetido em shards diferentes: precisa ser resolvido a mao
+                log.warn("{} usado pelos usuarios {} e {}", key, existing.get().getUserId(), user.getId());
+            }
+        }
+    }
+
+    private int moveLookupIndex(int source) {
+        int moved = 0;
+        String lastKey = "";
+        List<UserLookupIndex> batch;
+        do {
+            String after = lastKey;
+            batch = ShardContext.call(source,
+                    () -> lookupIndexRepository.findByLookupKeyGreaterThanOrderByLookupKeyAsc(after, PageRequest.of(0, batchSize)));
+            for (UserLookupIndex index : batch) {
+                int target = shardRouter.shardForLookupKey(index.getLookupKey());
+                if (target != source && moveLookupKey(index.getLookupKey(), source, target)) {
+                    moved++;
+                }
+                lastKey = index.getLookupKey();
+            }
+        } while (batch.size() == batchSize);
+        return moved;
+    }
+
+    //Na transacao do shard antigo: trava a linha, copia para o destino e apaga a original
+    private boolean moveUser(int id, int source, int target) {
+        return ShardContext.call(source, () -> transactionTemplate.execute(status -> {
+            Optional<User> locked = userRepository.findLockedById(id);
+            if (locked.isEmpty()) {
+                return false; //Apagado pela API depois que o lote foi lido
+            }
+            User user = locked.get();
+            User copy = new User();
+            copy.setId(user.getId());
+            copy.setUsername(user.getUsername());
+            copy.setEmail(user.getEmail());
+            copy.setPassword(user.getPassword());
+            copy.setRole(user.getRole());
+            onShard(target, () -> {
+                insertIfAbsent(() -> userRepository.existsById(id), () -> userRepository.save(copy));
+                return null;
+            });
+            userRepository.deleteRowById(id);
+            return true;
+        }));
+    }
+
+    private boolean moveLookupKey(String key, int source, int target) {
+        return ShardContext.call(source, () -> transactionTemplate.execute(status -> {
+            Optional<UserLookupIndex> locked = lookupIndexRepository.findLockedByLookupKey(key);
+            if (locked.isEmpty()) {
+                return false;
+            }
+            int userId = locked.get().getUserId();
+            int targetUserId = onShard(target, () -> {
+                insertIfAbsent(() -> lookupIndexRepository.existsById(key),
+                        () -> lookupIndexRepository.save(new UserLookupIndex(key, userId)));
+                return lookupIndexRepository.findById(key).orElseThrow().getUserId();
+            });
+            if (targetUserId != userId) {
+                //A chave ja foi usada por outro usuario no shard novo: as duas entradas ficam ate alguem resolver a mao
+                log.warn("{} e do usuario {} no shard {} e do usuario {} no shard {}; entrada mantida no shard antigo",
+                        key, userId, source, targetUserId, target);
+                return false;
+            }
+            lookupIndexRepository.deleteRowByLookupKey(key);
+            return true;
+        }));
+    }
+
+    //A transacao do shard antigo esta presa a esta thread, entao a escrita no destino roda em outra thread (outra conexao)
+    private <T> T onShard(int shard, Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(() -> ShardContext.call(shard, operation), rebalanceExecutor).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    //Se a API gravou a mesma linha no destino ao mesmo tempo, a versao dela e a mais nova e fica.
+    //Qualquer outra violacao (ex.: email repetido em dados antigos) interrompe o rebalanceamento antes de apagar a original.
+    private static void insertIfAbsent(BooleanSupplier exists, Runnable insert) {
+        if (exists.getAsBoolean()) {
+            return;
+        }
+        try {
+            insert.run();
+        } catch (DataIntegrityViolationException e) {
+            if (!exists.getAsBoolean()) {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.api_user.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+//Anel de hash consistente: decide em qual shard fica cada usuario (pelo id)
+//e cada entrada do indice de busca (pela chave, ex.: "username:ayumi").
+//Ao adicionar um shard novo, so as chaves que caem no trecho dele mudam de lugar.
+//Durante um rebalanceamento tambem guarda o anel anterior (app.sharding.previous-shards):
+//uma linha que ainda nao foi movida esta no shard que o anel anterior escolhe.
+public class ShardRouter {
+
+    private final TreeMap<Long, Integer> ring;
+    private final TreeMap<Long, Integer> previousRing;
+    private final int shardCount;
+
+    public ShardRouter(List<String> shardNames, List<String> previousShardNames, int virtualNodes) {
+        this.shardCount = shardNames.size();
+        this.ring = buildRing(shardNames, shardNames, virtualNodes);
+        this.previousRing = previousShardNames.isEmpty() ? null : buildRing(previousShardNames, shardNames, virtualNodes);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isResharding() {
+        return previousRing != null;
+    }
+
+    public int shardForId(int id) {
+        return shardFor(ring, "id:" + id);
+    }
+
+    public int shardForLookupKey(String lookupKey) {
+        return shardFor(ring, lookupKey);
+    }
+
+    //Shard do id no anel anterior (o mesmo do anel atual quando nao ha rebalanceamento)
+    public int previousShardForId(int id) {
+        return isResharding() ? shardFor(previousRing, "id:" + id) : shardForId(id);
+    }
+
+    public int previousShardForLookupKey(String lookupKey) {
+        return isResharding() ? shardFor(previousRing, lookupKey) : shardForLookupKey(lookupKey);
+    }
+
+    //Os pontos de cada shard dependem so do nome; o valor guardado e a posicao do shard na lista atual
+    private static TreeMap<Long, Integer> buildRing(List<String> ringNames, List<String> shardNames, int virtualNodes) {
+        TreeMap<Long, Integer> ring = new TreeMap<>();
+        for (String name : ringNames) {
+            int shard = shardNames.indexOf(name);
+            if (shard < 0) {
+                throw new IllegalStateException("Shard " + name + " do anel anterior nao esta em app.sharding.shards " + shardNames);
+            }
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash(name + "#" + node), shard);
+            }
+        }
+        return ring;
+    }
+
+    private static int shardFor(TreeMap<Long, Integer> ring, String key) {
+        //Primeiro ponto do anel a partir do hash da chave (volta pro inicio se passar do fim)
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xFF);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 indisponivel", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.api_user.sharding;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+
+//DataSource que escolhe o shard de acordo com o ShardContext.
+//Sem shard definido so e aceito na inicializacao (o Hibernate le os metadados do banco pelo shard 0).
+//Depois disso uma consulta sem ShardContext falha, em vez de ler ou gravar em silencio so no shard 0
+//(ex.: alguem injetando o UserRepository direto, sem passar pelo ShardedUserRepository).
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements SmartInitializingSingleton, Closeable {
+
+    private volatile boolean started;
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        if (shard == null && started) {
+            throw new IllegalStateException("Consulta sem shard definido: use o ShardedUserRepository ou ShardContext.call");
+        }
+        return shard;
+    }
+
+    //Chamado depois que todos os beans (incluindo o EntityManagerFactory) foram criados
+    @Override
+    public void afterSingletonsInstantiated() {
+        started = true;
+    }
+
+    //Fecha os pools de conexao de todos os shards quando o contexto do Spring termina
+    @Override
+    public void close() throws IOException {
+        for (DataSource dataSource : getResolvedDataSources().values()) {
+            if (dataSource instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.api_user.sharding;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/* Em cada shard (MySQL)
+CREATE TABLE users(
+    id INT PRIMARY KEY NOT NULL,
+    username VARCHAR(30) NOT NULL UNIQUE,
+    email VARCHAR(100) NOT NULL UNIQUE,
+    password VARCHAR(100) NOT NULL,
+    role VARCHAR(50) NOT NULL
+);
+CREATE TABLE users_lookup_index(
+    lookup_key VARCHAR(120) COLLATE utf8mb4_bin PRIMARY KEY NOT NULL,
+    user_id INT NOT NULL
+);
+A chave ja vem em minusculas (UserLookupIndex.usernameKey/emailKey), por isso a comparacao binaria.
+
+So no shard da sequencia (app.sharding.sequence-shard, ou o primeiro da lista)
+CREATE TABLE user_id_sequence(
+    id INT PRIMARY KEY NOT NULL,
+    next_val INT NOT NULL
+);
+INSERT INTO user_id_sequence VALUES (1, 1);
+
+Migrando a tabela users antiga (AUTO_INCREMENT), o contador tem que comecar depois do maior id existente,
+senao o UserIdGenerator devolve ids que ja estao em uso (no lugar do INSERT acima):
+INSERT INTO user_id_sequence SELECT 1, COALESCE(MAX(id), 0) + 1 FROM users;
+As linhas antigas nao tem entradas no users_lookup_index: rode o rebalanceamento uma vez
+(--app.sharding.rebalance=true) antes de liberar cadastros, ele cria as entradas que faltam.
+Ate la um username ou email ja existente poderia ser cadastrado de novo em outro shard.
+
+O spring.jpa.open-in-view fica desligado (ShardingEnvironmentPostProcessor): com ele ligado
+todas as consultas de uma requisicao usariam a conexao do primeiro shard acessado.
+ */
+
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    public ShardingConfig(Environment environment) {
+        if (environment.getProperty(ShardingEnvironmentPostProcessor.OPEN_IN_VIEW, Boolean.class, false)) {
+            throw new IllegalStateException(ShardingEnvironmentPostProcessor.OPEN_IN_VIEW
+                    + "=true nao funciona com a tabela users dividida em shards");
+        }
+    }
+
+    //DataSource usado pelo JPA: roteia cada conexao para o shard do ShardContext
+    @Bean
+    @Primary
+    public ShardRoutingDataSource dataSource(ShardingProperties properties, DataSourceProperties defaultProperties) {
+        Map<Object, Object> targets = new HashMap<>();
+        List<ShardingProperties.Shard> shards = properties.getShards();
+        if (shards.isEmpty()) {
+            //Sem shards configurados: spring.datasource.* funciona como antes, com um shard so
+            targets.put(0, defaultProperties.initializeDataSourceBuilder().build());
+        }
+        for (int i = 0; i < shards.size(); i++) {
+            ShardingProperties.Shard shard = shards.get(i);
+            targets.put(i, DataSourceBuilder.create()
+                    .url(shard.getUrl())
+                    .username(shard.getUsername())
+                    .password(shard.getPassword())
+                    .build());
+        }
+
+        ShardRoutingDataSource dataSource = new ShardRoutingDataSource();
+        dataSource.setTargetDataSources(targets);
+        dataSource.setDefaultTargetDataSource(targets.get(0));
+        dataSource.setLenientFallback(false);
+        return dataSource;
+    }
+
+    @Bean
+    public ShardRouter shardRouter(ShardingProperties properties) {
+        return new ShardRouter(shardNames(properties), properties.getPreviousShards(), properties.getVirtualNodes());
+    }
+
+    @Bean
+    public UserIdGenerator userIdGenerator(ShardRoutingDataSource dataSource, ShardingProperties properties) {
+        List<String> names = shardNames(properties);
+        int sequenceShard = properties.getSequenceShard() == null ? 0 : names.indexOf(properties.getSequenceShard());
+        if (sequenceShard < 0) {
+            throw new IllegalStateException("app.sharding.sequence-shard=" + properties.getSequenceShard()
+                    + " nao esta em app.sharding.shards " + names);
+        }
+        return new UserIdGenerator(new JdbcTemplate(dataSource), sequenceShard, properties.getIdBlockSize());
+    }
+
+    //Threads usadas para consultar todos os shards em paralelo (scatter-gather)
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService shardExecutor(ShardRouter shardRouter, ShardingProperties properties) {
+        return Executors.newFixedThreadPool(shardRouter.getShardCount() * properties.getQueryThreadsPerShard());
+    }
+
+    //Separado do shardExecutor: o ShardRebalancer espera a copia com a linha travada no shard antigo,
+    //entao ela nao pode ficar na fila atras das consultas da API
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService rebalanceExecutor() {
+        return Executors.newSingleThreadExecutor();
+    }
+
+    //Nome de cada shard, na ordem da lista (o indice e a chave usada no ShardRoutingDataSource)
+    private static List<String> shardNames(ShardingProperties properties) {
+        List<ShardingProperties.Shard> shards = properties.getShards();
+        if (shards.isEmpty()) {
+            return List.of("default");
+        }
+        return IntStream.range(0, shards.size())
+                .mapToObj(i -> shards.get(i).getName() != null ? shards.get(i).getName() : "shard-" + i)
+                .toList();
+    }
+
+    //Rodar com --app.sharding.rebalance=true depois de adicionar um shard (com app.sharding.previous-shards configurado):
+    //copia os usuarios para o shard dono atual e apaga a copia antiga, com a API no ar.
+    @Bean
+    @ConditionalOnProperty(name = "app.sharding.rebalance", havingValue = "true")
+    public ApplicationRunner shardRebalanceRunner(ShardRebalancer shardRebalancer) {
+        return args -> shardRebalancer.rebalance();
+    }
+}
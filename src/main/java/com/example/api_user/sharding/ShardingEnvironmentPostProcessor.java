@@ -0,0 +1,24 @@
+package com.example.api_user.sharding;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+//Desliga o open-in-view por padrao (o Spring Boot liga).
+//Com ele ligado a requisicao inteira usa uma sessao do Hibernate, que fica com a primeira conexao aberta,
+//e todas as consultas seguintes iriam para esse shard ignorando o ShardContext.
+//Fica por ultimo na lista de fontes, entao so vale quando ninguem configurou a propriedade;
+//se alguem ligar explicitamente, o ShardingConfig impede a aplicacao de subir.
+//Registrado em META-INF/spring.factories.
+public class ShardingEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String OPEN_IN_VIEW = "spring.jpa.open-in-view";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        environment.getPropertySources().addLast(new MapPropertySource("sharding-defaults", Map.of(OPEN_IN_VIEW, "false")));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.api_user.sharding;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Configuracao dos shards da tabela users (application.properties)
+//Exemplo:
+//app.sharding.shards[0].name=shard-a
+//app.sharding.shards[0].url=jdbc:mysql://localhost:3306/users_a
+//app.sharding.shards[0].username=root
+//app.sharding.shards[0].password=root
+//app.sharding.shards[1].name=shard-b
+//...
+//Se nenhum shard for configurado, o spring.datasource.* vira o unico shard.
+
+@Data
+@ConfigurationProperties(prefix = "app.sharding")
+public class ShardingProperties {
+
+    private List<Shard> shards = new ArrayList<>();
+
+    //Pontos de cada shard no anel de hash consistente (mais pontos = distribuicao mais uniforme)
+    private int virtualNodes = 64;
+
+    //Quantos ids sao reservados de uma vez na tabela user_id_sequence
+    private int idBlockSize = 100;
+
+    //Nome do shard que guarda a tabela user_id_sequence. Sem valor fica o primeiro da lista,
+    //e ai shards[0] nunca pode mudar (um shard novo vai no fim da lista).
+    private String sequenceShard;
+
+    //Consultas simultaneas por shard no scatter-gather (listagem, paginacao, contagem).
+    //O pool tem shards x esse valor threads, compartilhado por todas as requisicoes.
+    private int queryThreadsPerShard = 8;
+
+    //Nomes dos shards antes de adicionar um shard novo (ex.: previous-shards=shard-a,shard-b).
+    //Fica configurado em todas as instancias enquanto o ShardRebalancer nao terminar: buscas, cadastros e remocoes
+    //tambem olham o shard do anel anterior, onde as linhas ainda nao movidas estao. Depois do rebalanceamento, remover.
+    //Migrando da tabela users antiga: o nome do shard que tem essa tabela.
+    private List<String> previousShards = new ArrayList<>();
+
+    //Quantidade de linhas copiadas por lote no rebalanceamento
+    private int rebalanceBatchSize = 500;
+
+    @Data
+    public static class Shard {
+        //O nome (e nao a posicao na lista) define o lugar do shard no anel,
+        //entao ele deve continuar o mesmo quando shards forem adicionados.
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+    }
+}
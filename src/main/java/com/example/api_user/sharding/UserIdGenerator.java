@@ -0,0 +1,70 @@
+package com.example.api_user.sharding;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+//Gera ids globalmente unicos para a tabela users sem usar AUTO_INCREMENT.
+//Um bloco de ids e reservado na tabela user_id_sequence do shard da sequencia (hi/lo),
+//assim so uma a cada idBlockSize insercoes precisa ir ate esse shard.
+public class UserIdGenerator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int sequenceShard;
+    private final int blockSize;
+
+    private int next;
+    private int limit;
+
+    public UserIdGenerator(JdbcTemplate jdbcTemplate, int sequenceShard, int blockSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceShard = sequenceShard;
+        this.blockSize = blockSize;
+    }
+
+    public synchronized int nextId() {
+        if (next >= limit) {
+            next = reserveBlock();
+            limit = next + blockSize;
+        }
+        return next++;
+    }
+
+    //Le o proximo valor com lock, avanca o contador e devolve o inicio do bloco reservado
+    private int reserveBlock() {
+        return ShardContext.call(sequenceShard, () -> jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int start = selectForUpdate(connection);
+                try (PreparedStatement update = connection.prepareStatement(
+                        "UPDATE user_id_sequence SET next_val = ? WHERE id = 1")) {
+                    update.setInt(1, start + blockSize);
+                    update.executeUpdate();
+                }
+                connection.commit();
+                return start;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }));
+    }
+
+    private static int selectForUpdate(Connection connection) throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT next_val FROM user_id_sequence WHERE id = 1 FOR UPDATE");
+             ResultSet resultSet = select.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("Tabela user_id_sequence sem a linha id = 1");
+            }
+            return resultSet.getInt(1);
+        }
+    }
+}
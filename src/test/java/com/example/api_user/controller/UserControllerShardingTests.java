@@ -0,0 +1,140 @@
+package com.example.api_user.controller;
+
+import com.example.api_user.dto.UserDTO;
+import com.example.api_user.repository.UserRepository;
+import com.example.api_user.model.UserLookupIndex;
+import com.example.api_user.repository.UserLookupIndexRepository;
+import com.example.api_user.sharding.ShardContext;
+import com.example.api_user.sharding.ShardRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+//Passa pela pilha web inteira (com a configuracao padrao de open-in-view) e confere em qual shard cada linha foi gravada
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserControllerShardingTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLookupIndexRepository lookupIndexRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    void cleanShards() {
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            ShardContext.run(shard, () -> {
+                userRepository.deleteAll();
+                lookupIndexRepository.deleteAll();
+            });
+        }
+    }
+
+    @Test
+    void requestsWriteEachRowOnItsOwnShard() throws Exception {
+        List<UserDTO> created = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            created.add(send(post("/api/users").content(json(newUser("web" + i)))));
+        }
+        UserDTO renamed = send(put("/api/users/" + created.get(0).getId()).content(json(newUser("renomeado"))));
+
+        for (UserDTO user : created) {
+            assertOnlyOnShard(user.getId(), shardRouter.shardForId(user.getId()));
+        }
+        assertKeyOnlyOnOwnerShard(UserLookupIndex.usernameKey(renamed.getUsername()));
+        assertKeyOnlyOnOwnerShard(UserLookupIndex.emailKey(renamed.getEmail()));
+        for (UserDTO user : created.subList(1, created.size())) {
+            assertKeyOnlyOnOwnerShard(UserLookupIndex.usernameKey(user.getUsername()));
+            assertKeyOnlyOnOwnerShard(UserLookupIndex.emailKey(user.getEmail()));
+        }
+    }
+
+    @Test
+    void rejectsInvalidPages() throws Exception {
+        for (String query : List.of("page=-1&size=10", "page=0&size=0", "page=0&size=101", "page=200&size=100", "page=2147483647&size=100")) {
+            mockMvc.perform(get("/api/users/page?" + query).with(user("admin")))
+                    .andExpect(status().isBadRequest());
+        }
+        mockMvc.perform(get("/api/users/page?page=0&size=100").with(user("admin")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void pageResponseHasStableShape() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            send(post("/api/users").content(json(newUser("pagina" + i))));
+        }
+
+        mockMvc.perform(get("/api/users/page?page=1&size=2").with(user("admin")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(1))
+                .andExpect(jsonPath("$.content[0].username").value("pagina2"))
+                .andExpect(jsonPath("$.page.size").value(2))
+                .andExpect(jsonPath("$.page.number").value(1))
+                .andExpect(jsonPath("$.page.totalElements").value(3))
+                .andExpect(jsonPath("$.page.totalPages").value(2));
+    }
+
+    private void assertOnlyOnShard(int id, int owner) {
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            boolean exists = ShardContext.call(shard, () -> userRepository.existsById(id));
+            assertEquals(shard == owner, exists, "usuario " + id + " no shard " + shard);
+        }
+    }
+
+    private void assertKeyOnlyOnOwnerShard(String key) {
+        int owner = shardRouter.shardForLookupKey(key);
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            boolean exists = ShardContext.call(shard, () -> lookupIndexRepository.existsById(key));
+            assertEquals(shard == owner, exists, key + " no shard " + shard);
+        }
+    }
+
+    private UserDTO send(MockHttpServletRequestBuilder request) throws Exception {
+        String body = mockMvc.perform(request.contentType(MediaType.APPLICATION_JSON).with(user("admin")).with(csrf()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(body, UserDTO.class);
+    }
+
+    private String json(UserDTO userDTO) throws Exception {
+        return objectMapper.writeValueAsString(userDTO);
+    }
+
+    private static UserDTO newUser(String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        userDTO.setEmail(username + "@teste.com");
+        userDTO.setRole("Desenvolvedor");
+        userDTO.setPassword("root");
+        return userDTO;
+    }
+}
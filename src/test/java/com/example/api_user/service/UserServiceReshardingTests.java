@@ -0,0 +1,288 @@
+package com.example.api_user.service;
+
+import com.example.api_user.dto.UserDTO;
+import com.example.api_user.model.User;
+import com.example.api_user.model.UserLookupIndex;
+import com.example.api_user.repository.UserLookupIndexRepository;
+import com.example.api_user.repository.UserRepository;
+import com.example.api_user.sharding.ShardContext;
+import com.example.api_user.sharding.ShardRebalancer;
+import com.example.api_user.sharding.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Simula o rebalanceamento depois de adicionar o shard-c: o anel anterior tinha so shard-a e shard-b
+@SpringBootTest(properties = "app.sharding.previous-shards=shard-a,shard-b")
+class UserServiceReshardingTests {
+
+    //Segura a copia do ShardRebalancer (que roda no rebalanceExecutor) enquanto o teste faz outra operacao
+    private static volatile boolean gateArmed;
+    private static volatile CountDownLatch copyStarted;
+    private static volatile CountDownLatch releaseCopy;
+
+    @TestConfiguration
+    static class GateConfig {
+
+        @Bean
+        static BeanPostProcessor gatedRebalanceExecutor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return beanName.equals("rebalanceExecutor") ? new GatedExecutor((ExecutorService) bean) : bean;
+                }
+            };
+        }
+    }
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLookupIndexRepository lookupIndexRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeEach
+    void cleanShards() {
+        gateArmed = false;
+        copyStarted = new CountDownLatch(1);
+        releaseCopy = new CountDownLatch(1);
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            ShardContext.run(shard, () -> {
+                userRepository.deleteAll();
+                lookupIndexRepository.deleteAll();
+            });
+        }
+    }
+
+    @Test
+    void findsRowsOnThePreviousRingAndMovesThem() {
+        List<UserDTO> created = IntStream.range(0, 20).mapToObj(i -> userService.createUser(newUser("antes" + i))).toList();
+        int misplaced = 0;
+        for (UserDTO dto : created) {
+            misplaced += moveToPreviousShard(dto.getId()) ? 1 : 0;
+            misplaced += moveKeyToPreviousShard(UserLookupIndex.usernameKey(dto.getUsername())) ? 1 : 0;
+            misplaced += moveKeyToPreviousShard(UserLookupIndex.emailKey(dto.getEmail())) ? 1 : 0;
+        }
+        assertTrue(misplaced > 0);
+
+        for (UserDTO dto : created) {
+            assertEquals(dto.getId(), userService.getUserById(dto.getId()).getId());
+            assertEquals(dto.getId(), userService.getUserByUsername(dto.getUsername()).getId());
+        }
+
+        assertEquals(misplaced, shardRebalancer.rebalance());
+
+        for (UserDTO dto : created) {
+            assertTrue(ShardContext.call(shardRouter.shardForId(dto.getId()), () -> userRepository.existsById(dto.getId())));
+            assertEquals(1, shardsWithUser(dto.getId()));
+            assertEquals(dto.getId(), userService.getUserByUsername(dto.getUsername()).getId());
+        }
+        assertEquals(0, shardRebalancer.rebalance());
+    }
+
+    @Test
+    void rejectsUsernameStillIndexedOnThePreviousShard() {
+        String username = usernameWhere(key -> shardRouter.previousShardForLookupKey(key) != shardRouter.shardForLookupKey(key));
+        String key = UserLookupIndex.usernameKey(username);
+        ShardContext.run(shardRouter.previousShardForLookupKey(key), () -> lookupIndexRepository.save(new UserLookupIndex(key, 1_000_000)));
+
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(newUser(username)));
+
+        assertFalse(ShardContext.call(shardRouter.shardForLookupKey(key), () -> lookupIndexRepository.existsById(key)));
+    }
+
+    @Test
+    void keepsLookupKeyOwnedByAnotherUserOnTheTarget() {
+        String username = usernameWhere(key -> shardRouter.previousShardForLookupKey(key) != shardRouter.shardForLookupKey(key));
+        String key = UserLookupIndex.usernameKey(username);
+        int source = shardRouter.previousShardForLookupKey(key);
+        int target = shardRouter.shardForLookupKey(key);
+        ShardContext.run(source, () -> lookupIndexRepository.save(new UserLookupIndex(key, 1_000_000)));
+        ShardContext.run(target, () -> lookupIndexRepository.save(new UserLookupIndex(key, 1_000_001)));
+
+        assertEquals(0, shardRebalancer.rebalance());
+
+        assertEquals(1_000_000, ShardContext.call(source, () -> lookupIndexRepository.findById(key)).orElseThrow().getUserId());
+        assertEquals(1_000_001, ShardContext.call(target, () -> lookupIndexRepository.findById(key)).orElseThrow().getUserId());
+    }
+
+    @Test
+    void deleteWaitsForRowBeingMovedAndRemovesTheCopy() throws Exception {
+        UserDTO created = userService.createUser(newUser("movendo0"));
+        for (int i = 1; shardRouter.previousShardForId(created.getId()) == shardRouter.shardForId(created.getId()); i++) {
+            created = userService.createUser(newUser("movendo" + i));
+        }
+        int id = created.getId();
+        int source = shardRouter.previousShardForId(id);
+        moveToPreviousShard(id);
+
+        //O ShardRebalancer trava a linha no shard antigo e para antes de gravar a copia no shard novo
+        gateArmed = true;
+        CompletableFuture<Integer> rebalance = CompletableFuture.supplyAsync(shardRebalancer::rebalance);
+        assertTrue(copyStarted.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> delete = CompletableFuture.runAsync(() -> userService.deleteUser(id));
+        awaitBlockedSession(source);
+        assertFalse(delete.isDone());
+
+        releaseCopy.countDown();
+        rebalance.get(10, TimeUnit.SECONDS);
+        delete.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, shardsWithUser(id));
+        assertNull(userService.getUserById(id));
+    }
+
+    //Espera ate alguma sessao do shard estar parada esperando um lock (o DELETE da API)
+    private void awaitBlockedSession(int shard) throws InterruptedException {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (ShardContext.call(shard, () -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS WHERE BLOCKER_ID IS NOT NULL", Integer.class)) == 0) {
+            assertTrue(System.nanoTime() < deadline, "o DELETE nao ficou esperando o lock do ShardRebalancer");
+            Thread.sleep(10);
+        }
+    }
+
+    //Coloca o usuario onde o anel anterior o deixaria; devolve false se o shard e o mesmo
+    private boolean moveToPreviousShard(int id) {
+        int owner = shardRouter.shardForId(id);
+        int previous = shardRouter.previousShardForId(id);
+        if (owner == previous) {
+            return false;
+        }
+        User user = ShardContext.call(owner, () -> userRepository.findById(id).orElseThrow());
+        ShardContext.run(owner, () -> userRepository.deleteRowById(id));
+        User copy = legacyUser(user.getId(), user.getUsername(), user.getEmail());
+        ShardContext.run(previous, () -> userRepository.save(copy));
+        return true;
+    }
+
+    private boolean moveKeyToPreviousShard(String key) {
+        int owner = shardRouter.shardForLookupKey(key);
+        int previous = shardRouter.previousShardForLookupKey(key);
+        if (owner == previous) {
+            return false;
+        }
+        int userId = ShardContext.call(owner, () -> lookupIndexRepository.findById(key).orElseThrow()).getUserId();
+        ShardContext.run(owner, () -> lookupIndexRepository.deleteRowByLookupKey(key));
+        ShardContext.run(previous, () -> lookupIndexRepository.save(new UserLookupIndex(key, userId)));
+        return true;
+    }
+
+    private int shardsWithUser(int id) {
+        return (int) IntStream.range(0, shardRouter.getShardCount())
+                .filter(shard -> ShardContext.call(shard, () -> userRepository.existsById(id)))
+                .count();
+    }
+
+    private String usernameWhere(Predicate<String> keyMatches) {
+        return IntStream.iterate(0, i -> i + 1)
+                .mapToObj(i -> "chave" + i)
+                .filter(username -> keyMatches.test(UserLookupIndex.usernameKey(username)))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static User legacyUser(int id, String username, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setPassword("root");
+        user.setRole("Desenvolvedor");
+        return user;
+    }
+
+    private static UserDTO newUser(String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        userDTO.setEmail(username + "@teste.com");
+        userDTO.setRole("Desenvolvedor");
+        userDTO.setPassword("root");
+        return userDTO;
+    }
+
+    private static class GatedExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        GatedExecutor(ExecutorService delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!gateArmed) {
+                delegate.execute(command);
+                return;
+            }
+            CountDownLatch started = copyStarted;
+            CountDownLatch release = releaseCopy;
+            delegate.execute(() -> {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                command.run();
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
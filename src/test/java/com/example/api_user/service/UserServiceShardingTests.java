@@ -0,0 +1,318 @@
+package com.example.api_user.service;
+
+import com.example.api_user.dto.UserDTO;
+import com.example.api_user.model.User;
+import com.example.api_user.model.UserLookupIndex;
+import com.example.api_user.repository.UserRepository;
+import com.example.api_user.repository.UserLookupIndexRepository;
+import com.example.api_user.sharding.ShardContext;
+import com.example.api_user.sharding.ShardRebalancer;
+import com.example.api_user.sharding.ShardRouter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Usa os tres shards H2 definidos em src/test/resources/application.properties
+@SpringBootTest
+class UserServiceShardingTests {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserLookupIndexRepository lookupIndexRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private ShardRebalancer shardRebalancer;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeEach
+    void cleanShards() {
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            ShardContext.run(shard, () -> {
+                userRepository.deleteAll();
+                lookupIndexRepository.deleteAll();
+            });
+        }
+    }
+
+    @Test
+    void createdUsersAreSpreadAcrossShardsWithUniqueIds() {
+        List<UserDTO> created = IntStream.range(0, 30).mapToObj(i -> userService.createUser(newUser("user" + i))).toList();
+
+        assertEquals(30, created.stream().map(UserDTO::getId).distinct().count());
+        for (UserDTO user : created) {
+            int shard = shardRouter.shardForId(user.getId());
+            assertTrue(ShardContext.call(shard, () -> userRepository.existsById(user.getId())));
+        }
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            assertTrue(ShardContext.call(shard, () -> userRepository.count()) > 0, "shard " + shard + " vazio");
+        }
+    }
+
+    @Test
+    void idsComeFromTheConfiguredSequenceShard() {
+        userService.createUser(newUser("sequencia"));
+
+        //app.sharding.sequence-shard=shard-b, o segundo da lista nos testes
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        String select = "SELECT next_val FROM user_id_sequence WHERE id = 1";
+        assertTrue(ShardContext.call(1, () -> jdbcTemplate.queryForObject(select, Integer.class)) > 1);
+        assertEquals(1, ShardContext.call(0, () -> jdbcTemplate.queryForObject(select, Integer.class)));
+        assertEquals(1, ShardContext.call(2, () -> jdbcTemplate.queryForObject(select, Integer.class)));
+    }
+
+    @Test
+    void findsUserByUsernameAndId() {
+        UserDTO created = userService.createUser(newUser("ayumi"));
+
+        assertEquals(created.getId(), userService.getUserByUsername("ayumi").getId());
+        assertEquals("ayumi", userService.getUserById(created.getId()).getUsername());
+        assertNull(userService.getUserByUsername("ninguem"));
+    }
+
+    @Test
+    void queriesWithoutShardFail() {
+        RuntimeException error = assertThrows(RuntimeException.class, () -> userRepository.count());
+        assertInstanceOf(IllegalStateException.class, NestedExceptionUtils.getMostSpecificCause(error));
+    }
+
+    @Test
+    void refusesToSwitchShardWithBoundEntityManager() {
+        //Simula o OpenEntityManagerInViewInterceptor: a troca de shard seria ignorada, entao precisa falhar
+        //(o IllegalStateException do ShardContext chega traduzido pelo @Repository)
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            assertThrows(InvalidDataAccessApiUsageException.class, () -> userService.createUser(newUser("osiv")));
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            entityManager.close();
+        }
+        assertEquals(0, userService.countUsers());
+    }
+
+    @Test
+    void rejectsDuplicateUsernameAcrossShards() {
+        userService.createUser(newUser("jaques"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(newUser("jaques")));
+        assertEquals(1, userService.countUsers());
+    }
+
+    @Test
+    void newUserWithExistingIdFailsInsteadOfOverwriting() {
+        UserDTO existing = userService.createUser(newUser("original"));
+        User duplicate = new User();
+        duplicate.setId(existing.getId());
+        duplicate.setUsername("intruso");
+        duplicate.setEmail("intruso@teste.com");
+        duplicate.setPassword("root");
+        duplicate.setRole("Desenvolvedor");
+
+        assertThrows(DataIntegrityViolationException.class, () -> ShardContext.run(
+                shardRouter.shardForId(existing.getId()), () -> userRepository.save(duplicate)));
+        assertEquals("original", userService.getUserById(existing.getId()).getUsername());
+    }
+
+    @Test
+    void usernameAndEmailIgnoreCase() {
+        UserDTO created = userService.createUser(newUser("Ayumi"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(newUser("ayumi")));
+        UserDTO sameEmail = newUser("outra");
+        sameEmail.setEmail("AYUMI@teste.com");
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(sameEmail));
+        assertEquals(created.getId(), userService.getUserByUsername("AYUMI").getId());
+        assertEquals(1, userService.countUsers());
+    }
+
+    @Test
+    void rejectsDuplicateEmailAcrossShards() {
+        userService.createUser(newUser("dono"));
+        UserDTO copy = newUser("copia");
+        copy.setEmail("dono@teste.com");
+
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(copy));
+        assertFalse(indexed(UserLookupIndex.usernameKey("copia")));
+        assertEquals(1, userService.countUsers());
+    }
+
+    @Test
+    void loadedAndNewUserWithSameDataAreEqual() {
+        UserDTO created = userService.createUser(newUser("igual"));
+        User loaded = ShardContext.call(shardRouter.shardForId(created.getId()),
+                () -> userRepository.findById(created.getId()).orElseThrow());
+        User fresh = legacyUser(loaded.getId(), loaded.getUsername(), loaded.getEmail());
+        fresh.setPassword(loaded.getPassword());
+
+        assertEquals(loaded, fresh);
+        assertEquals(loaded.hashCode(), fresh.hashCode());
+        assertEquals(loaded.toString(), fresh.toString());
+    }
+
+    @Test
+    void failedCreateReleasesLookupKeys() {
+        //Linhas antigas sem entrada no indice: o indice aceita o email, mas a gravacao do usuario falha no shard
+        insertLegacyOnAllShards("antigo@teste.com");
+        UserDTO attempt = newUser("novo");
+        attempt.setEmail("antigo@teste.com");
+
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(attempt));
+        assertNull(userService.getUserByUsername("novo"));
+        assertFalse(indexed(UserLookupIndex.usernameKey("novo")));
+        assertFalse(indexed(UserLookupIndex.emailKey("antigo@teste.com")));
+    }
+
+    @Test
+    void failedUpdateReleasesNewLookupKeys() {
+        insertLegacyOnAllShards("antigo@teste.com");
+        UserDTO created = userService.createUser(newUser("atual"));
+        UserDTO changes = newUser("novonome");
+        changes.setEmail("antigo@teste.com");
+
+        assertThrows(DataIntegrityViolationException.class, () -> userService.updateUser(created.getId(), changes));
+        assertNull(userService.getUserByUsername("novonome"));
+        assertFalse(indexed(UserLookupIndex.usernameKey("novonome")));
+        assertFalse(indexed(UserLookupIndex.emailKey("antigo@teste.com")));
+        assertEquals(created.getId(), userService.getUserByUsername("atual").getId());
+        assertTrue(indexed(UserLookupIndex.emailKey("atual@teste.com")));
+    }
+
+    @Test
+    void indexIsAuthoritativeWhenNotResharding() {
+        //Fora de um rebalanceamento nao ha busca em todos os shards: uma linha fora do lugar nao e encontrada
+        UserDTO dto = userService.createUser(newUser("foradolugar"));
+        int owner = shardRouter.shardForId(dto.getId());
+        User user = ShardContext.call(owner, () -> userRepository.findById(dto.getId()).orElseThrow());
+        ShardContext.run(owner, () -> userRepository.deleteById(dto.getId()));
+        User misplaced = legacyUser(user.getId(), user.getUsername(), user.getEmail());
+        ShardContext.run((owner + 1) % shardRouter.getShardCount(), () -> userRepository.save(misplaced));
+        String key = UserLookupIndex.usernameKey("foradolugar");
+        ShardContext.run(shardRouter.shardForLookupKey(key), () -> lookupIndexRepository.deleteById(key));
+
+        assertNull(userService.getUserById(dto.getId()));
+        assertNull(userService.getUserByUsername("foradolugar"));
+    }
+
+    @Test
+    void rebalanceBackfillsLookupIndexForLegacyRows() {
+        User legacy = legacyUser(1_000_000, "legado", "legado@teste.com");
+        ShardContext.run(shardRouter.shardForId(legacy.getId()), () -> userRepository.save(legacy));
+
+        assertEquals(0, shardRebalancer.rebalance());
+
+        assertTrue(indexed(UserLookupIndex.usernameKey("legado")));
+        assertTrue(indexed(UserLookupIndex.emailKey("legado@teste.com")));
+        assertEquals(1_000_000, userService.getUserByUsername("legado").getId());
+        assertThrows(DataIntegrityViolationException.class, () -> userService.createUser(newUser("legado")));
+    }
+
+    @Test
+    void updateMovesUsernameIndex() {
+        UserDTO created = userService.createUser(newUser("antigo"));
+        UserDTO changes = newUser("novo");
+
+        userService.updateUser(created.getId(), changes);
+
+        assertNull(userService.getUserByUsername("antigo"));
+        assertEquals(created.getId(), userService.getUserByUsername("novo").getId());
+    }
+
+    @Test
+    void listsPagesAndCountsAllShardsOrderedById() {
+        List<Integer> ids = IntStream.range(0, 25).mapToObj(i -> userService.createUser(newUser("page" + i)).getId()).sorted().toList();
+
+        assertEquals(ids, userService.getAllUsers().stream().map(UserDTO::getId).toList());
+        assertEquals(25, userService.countUsers());
+
+        Page<UserDTO> page = userService.getUsersPage(PageRequest.of(1, 10));
+        assertEquals(ids.subList(10, 20), page.getContent().stream().map(UserDTO::getId).toList());
+        assertEquals(25, page.getTotalElements());
+        assertEquals(3, page.getTotalPages());
+    }
+
+    @Test
+    void shardErrorsReachCallerUnwrapped() {
+        userService.createUser(newUser("quebrado"));
+        //Quebra a tabela users de um shard: a consulta desse shard falha no meio do scatter-gather
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        ShardContext.run(1, () -> jdbcTemplate.execute("ALTER TABLE users ALTER COLUMN role RENAME TO role_off"));
+        try {
+            assertThrows(DataAccessException.class, () -> userService.getAllUsers());
+        } finally {
+            ShardContext.run(1, () -> jdbcTemplate.execute("ALTER TABLE users ALTER COLUMN role_off RENAME TO role"));
+        }
+    }
+
+    @Test
+    void deleteRemovesUserAndUsername() {
+        UserDTO created = userService.createUser(newUser("apagar"));
+
+        userService.deleteUser(created.getId());
+
+        assertNull(userService.getUserById(created.getId()));
+        assertNull(userService.getUserByUsername("apagar"));
+        assertEquals(0, userService.countUsers());
+    }
+
+    private boolean indexed(String key) {
+        return ShardContext.call(shardRouter.shardForLookupKey(key), () -> lookupIndexRepository.existsById(key));
+    }
+
+    //Linhas da tabela users antiga (sem entradas no indice), uma em cada shard
+    private void insertLegacyOnAllShards(String email) {
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            User legacy = legacyUser(1_000_000 + shard, "legado" + shard, email);
+            ShardContext.run(shard, () -> userRepository.save(legacy));
+        }
+    }
+
+    private static User legacyUser(int id, String username, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setPassword("root");
+        user.setRole("Desenvolvedor");
+        return user;
+    }
+
+    private static UserDTO newUser(String username) {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(username);
+        userDTO.setEmail(username + "@teste.com");
+        userDTO.setRole("Desenvolvedor");
+        userDTO.setPassword("root");
+        return userDTO;
+    }
+}
@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS users(
+    id INT PRIMARY KEY NOT NULL,
+    username VARCHAR(30) NOT NULL UNIQUE,
+    email VARCHAR(100) NOT NULL UNIQUE,
+    password VARCHAR(100) NOT NULL,
+    role VARCHAR(50) NOT NULL
+);
+CREATE TABLE IF NOT EXISTS users_lookup_index(
+    lookup_key VARCHAR(120) PRIMARY KEY NOT NULL,
+    user_id INT NOT NULL
+);
+CREATE TABLE IF NOT EXISTS user_id_sequence(
+    id INT PRIMARY KEY NOT NULL,
+    next_val INT NOT NULL
+);
+INSERT INTO user_id_sequence SELECT 1, 1 WHERE NOT EXISTS (SELECT 1 FROM user_id_sequence WHERE id = 1);